@@ -0,0 +1,235 @@
+import java.util.Arrays;
+
+/**
+ * @author Joshua A. Campbell
+ *
+ * Read-only graph that stores the adjacency lists compressed.
+ *
+ * The neighbors of every node are sorted and stored as gaps, each encoded
+ * as a varint (7 bits per byte, the high bit marks that another byte
+ * follows). The first neighbor is stored relative to the node itself, so
+ * ring lattice neighbors of a Watts-Strogatz graph take a single byte each.
+ * The encoded lists of all the nodes are concatenated in one byte array and
+ * found through an array of offsets.
+ */
+class CompressedGraph implements GraphView
+{
+    private int numNodes;
+    // Encoded neighbors of node i are in data[offsets[i]..offsets[i+1]).
+    private int[] offsets;
+    private int[] degrees;
+    private byte[] data;
+    // Identifiers before relabeling, or null if the copied graph was never
+    // relabeled.
+    private int[] originalIdentifiers;
+
+    /**
+     * Constructs a compressed copy of the given graph.
+     */
+    public CompressedGraph(GraphView graph)
+    {
+        this.numNodes = graph.getNumNodes();
+        this.offsets = new int[numNodes + 2];
+        this.degrees = new int[numNodes + 1];
+        this.originalIdentifiers = GraphMetrics.getOriginalIdentifiers(graph);
+
+        // First pass: find the size of every encoded list.
+        long size = 0;
+        for (int i = 1; i <= numNodes; i++)
+        {
+            offsets[i] = (int) size;
+            degrees[i] = graph.getDegree(i);
+            size += encodedLength(i, sortedNeighbors(graph, i));
+            if (size > Integer.MAX_VALUE)
+                throw new RuntimeException("Graph too large to compress");
+        }
+        offsets[numNodes + 1] = (int) size;
+
+        // Second pass: encode.
+        this.data = new byte[(int) size];
+        for (int i = 1; i <= numNodes; i++)
+        {
+            int pos = offsets[i];
+            int prev = i;
+            boolean first = true;
+            for (int neighbor : sortedNeighbors(graph, i))
+            {
+                if (first)
+                    pos = writeVarint(zigZag(neighbor - prev), pos);
+                else
+                    pos = writeVarint(neighbor - prev, pos);
+                prev = neighbor;
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     */
+    @Override
+    public int getNumNodes()
+    {
+        return this.numNodes;
+    }
+
+    /**
+     * Returns the number of neighbors of the given node.
+     */
+    @Override
+    public int getDegree(int node)
+    {
+        return this.degrees[node];
+    }
+
+    /**
+     * Returns an iterator over the neighbors of the given node, in
+     * increasing order.
+     */
+    @Override
+    public NeighborIterator getNeighborIterator(int node)
+    {
+        return new Decoder(node);
+    }
+
+    /**
+     * Returns the identifier the given node had in the graph this was copied
+     * from, before it was relabeled.
+     */
+    @Override
+    public int getOriginalIdentifier(int node)
+    {
+        if (this.originalIdentifiers == null)
+            return node;
+        return this.originalIdentifiers[node];
+    }
+
+    /**
+     * Returns the number of bytes used by the encoded adjacency lists.
+     */
+    public long getEncodedSize()
+    {
+        return this.data.length;
+    }
+
+    /**
+     * Decodes the neighbors of a single node.
+     */
+    private class Decoder implements NeighborIterator
+    {
+        private int pos;
+        private int remaining;
+        private int prev;
+        private boolean first;
+
+        public Decoder(int node)
+        {
+            this.pos = offsets[node];
+            this.remaining = degrees[node];
+            this.prev = node;
+            this.first = true;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return remaining > 0;
+        }
+
+        @Override
+        public int nextNeighbor()
+        {
+            // Read the varint.
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while (b < 0);
+
+            // The first neighbor is zig-zag encoded relative to the node.
+            if (first)
+            {
+                prev += (value >>> 1) ^ -(value & 1);
+                first = false;
+            }
+            else
+                prev += value;
+
+            remaining--;
+            return prev;
+        }
+    }
+
+    /**
+     * Returns the neighbors of the given node in increasing order.
+     */
+    private static int[] sortedNeighbors(GraphView graph, int node)
+    {
+        int[] neighbors = new int[graph.getDegree(node)];
+        int count = 0;
+        NeighborIterator it = graph.getNeighborIterator(node);
+        while (it.hasNext())
+            neighbors[count++] = it.nextNeighbor();
+        Arrays.sort(neighbors);
+        return neighbors;
+    }
+
+    /**
+     * Returns the number of bytes needed to encode the given sorted neighbors
+     * of the given node.
+     */
+    private static int encodedLength(int node, int[] neighbors)
+    {
+        int length = 0;
+        int prev = node;
+        for (int i = 0; i < neighbors.length; i++)
+        {
+            int value = (i == 0) ? zigZag(neighbors[i] - prev) : neighbors[i] - prev;
+            length += varintLength(value);
+            prev = neighbors[i];
+        }
+        return length;
+    }
+
+    /**
+     * Maps signed values to unsigned ones so small magnitudes stay small.
+     */
+    private static int zigZag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Returns the number of bytes used by the varint of the given value.
+     */
+    private static int varintLength(int value)
+    {
+        int length = 1;
+        while ((value & ~0x7F) != 0)
+        {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the given value as a varint at the given position and returns
+     * the position after it.
+     */
+    private int writeVarint(int value, int pos)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            data[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[pos++] = (byte) value;
+        return pos;
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Joshua A. Campbell
+ *
+ * Single source shortest paths on a WeightedGraph using Dial's algorithm.
+ *
+ * The weights are small positive integers, so instead of a heap the
+ * tentative distances are kept in maxWeight + 1 buckets used as a ring:
+ * every node waiting in the queue is at most maxWeight away from the
+ * current distance, so bucket d % (maxWeight + 1) only ever holds nodes at
+ * distance d. Buckets are doubly linked lists threaded through int arrays,
+ * so moving a node to a closer bucket is O(1) and nothing is allocated
+ * while searching.
+ *
+ * An instance holds the buffers of one search and is not thread-safe. The
+ * closeness distribution gives every thread its own instance.
+ */
+class DialShortestPaths
+{
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final int NONE = -1;
+
+    private WeightedGraph graph;
+    private int numBuckets;
+    // Distance of every node from the source.
+    private int[] distances;
+    // Whether the distance of a node is final.
+    private boolean[] settled;
+    // First node of every bucket.
+    private int[] heads;
+    // Neighbors of every node in its bucket.
+    private int[] next;
+    private int[] prev;
+
+    /**
+     * Allocates the buffers for searches on the given graph.
+     */
+    public DialShortestPaths(WeightedGraph graph)
+    {
+        int numNodes = graph.getNumNodes();
+        if ((long) numNodes * graph.getMaxWeight() >= INFINITY)
+            throw new RuntimeException("Distances may overflow");
+
+        this.graph = graph;
+        this.numBuckets = graph.getMaxWeight() + 1;
+        this.distances = new int[numNodes + 1];
+        this.settled = new boolean[numNodes + 1];
+        this.heads = new int[numBuckets];
+        this.next = new int[numNodes + 1];
+        this.prev = new int[numNodes + 1];
+    }
+
+    /**
+     * Computes the weighted closeness centrality of the given node,
+     *  f_close(u) = sum( 1 / dist(u,v) ) for all v in V-{u}.
+     * Unreachable nodes add nothing to the sum. The nodes at the same
+     * distance are added together, so the rounding does not depend on the
+     * order the nodes are found in, and relabeling the graph does not change
+     * the result.
+     */
+    public double getClosenessCentrality(int source)
+    {
+        Arrays.fill(distances, INFINITY);
+        Arrays.fill(settled, false);
+        Arrays.fill(heads, NONE);
+
+        distances[source] = 0;
+        insert(source);
+        int queued = 1;
+        int current = 0;
+
+        // Closeness centrality for this node, and the number of nodes found
+        // at the current distance and not yet added to it.
+        double centrality = 0.0;
+        int numAtCurrent = 0;
+
+        while (queued > 0)
+        {
+            // Find the next non-empty bucket.
+            if (heads[current % numBuckets] == NONE)
+            {
+                if (numAtCurrent > 0)
+                    centrality += (double) numAtCurrent / current;
+                numAtCurrent = 0;
+                while (heads[current % numBuckets] == NONE)
+                    current++;
+            }
+
+            int node = heads[current % numBuckets];
+            remove(node);
+            queued--;
+            settled[node] = true;
+
+            if (node != source)
+                numAtCurrent++;
+
+            // Relax the edges of the node.
+            int end = graph.getFirstEntry(node + 1);
+            for (int entry = graph.getFirstEntry(node); entry < end; entry++)
+            {
+                int neighbor = graph.getNeighbor(entry);
+                if (settled[neighbor])
+                    continue;
+
+                int alt = current + graph.getWeight(entry);
+                if (alt < distances[neighbor])
+                {
+                    if (distances[neighbor] == INFINITY)
+                        queued++;
+                    else
+                        remove(neighbor);
+
+                    distances[neighbor] = alt;
+                    insert(neighbor);
+                }
+            }
+        }
+
+        if (numAtCurrent > 0)
+            centrality += (double) numAtCurrent / current;
+        return centrality;
+    }
+
+    /**
+     * Returns the distance of the given node from the source of the last
+     * search, or Integer.MAX_VALUE if it is unreachable.
+     */
+    public int getDistance(int node)
+    {
+        return distances[node];
+    }
+
+    /**
+     * Returns the distribution of the weighted closeness centralities,
+     * computed from every source on numThreads threads.
+     */
+    public static Map<String, Double> getClosenessCentralityDistribution(
+            final WeightedGraph graph, int numThreads)
+    {
+        final int numNodes = graph.getNumNodes();
+        final double[] centralities = new double[numNodes + 1];
+        final AtomicInteger nextSource = new AtomicInteger(1);
+
+        // Every thread takes the next source until all are done.
+        ParallelTasks.run(numThreads, new ParallelTasks.Task()
+        {
+            @Override
+            public void run(int thread)
+            {
+                DialShortestPaths paths = new DialShortestPaths(graph);
+                int source;
+                while ((source = nextSource.getAndIncrement()) <= numNodes)
+                    centralities[source] = paths.getClosenessCentrality(source);
+            }
+        });
+
+        Map<String, Double> distribution = new TreeMap<String, Double>();
+        for (int i = 1; i <= numNodes; i++)
+        {
+            // Round to ten decimal places.
+            GraphMetrics.increment(distribution, String.format("%.10f", centralities[i]));
+        }
+
+        return GraphMetrics.scale(distribution, numNodes);
+    }
+
+    /**
+     * Adds the node to the bucket of its distance.
+     */
+    private void insert(int node)
+    {
+        int bucket = distances[node] % numBuckets;
+        prev[node] = NONE;
+        next[node] = heads[bucket];
+        if (heads[bucket] != NONE)
+            prev[heads[bucket]] = node;
+        heads[bucket] = node;
+    }
+
+    /**
+     * Removes the node from the bucket of its distance.
+     */
+    private void remove(int node)
+    {
+        if (prev[node] == NONE)
+            heads[distances[node] % numBuckets] = next[node];
+        else
+            next[prev[node]] = next[node];
+
+        if (next[node] != NONE)
+            prev[next[node]] = prev[node];
+    }
+}
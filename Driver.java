@@ -1,5 +1,12 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * @author Joshua A. Campbell
@@ -10,11 +17,37 @@ class Driver
 {
     // Our graph.
     private Graph graph;
+    // Graph generated straight off the heap, used instead of graph with
+    // -offheap for ER models and parallel SF models.
+    private OffHeapGraph offHeapGraph;
+    // Source of randomness for the models.
+    private Random random = new Random();
+    // Number of threads generating scale-free models, 0 to use the
+    // sequential generator.
+    private int generatorThreads;
+    // Name of the node ordering applied before computing statistics, or null
+    // to keep the generation order.
+    private String nodeOrdering;
+    // Whether the statistics are computed on a CompressedGraph.
+    private boolean compressed;
+    // Whether the statistics are computed on an OffHeapGraph.
+    private boolean offHeap;
+    // Error bounds of the approximate clustering coefficients, or 0 to
+    // compute them exactly.
+    private double clusteringError;
+    private double clusteringFailureProbability;
+    // Weighting of the edges for the closeness centralities, or null for
+    // unit weights.
+    private String weighting;
+    private int maxWeight;
+    // Seed of the uniform weights.
+    private long weightSeed;
 
     // Output locations.
     private static final String degreeOutput = "degree.txt";
     private static final String clusterOutput = "clustering.txt";
     private static final String closenessOutput = "closeness.txt";
+    private static final String transitivityOutput = "transitivity.txt";
 
     public Driver(){}
 
@@ -26,7 +59,10 @@ class Driver
      */
     public void createErdoRenyiModel(int num, double prob)
     {
-        graph = new ErdoRenyiModel(num, prob);
+        if (offHeap)
+            offHeapGraph = ErdoRenyiModel.generateOffHeap(num, prob, random);
+        else
+            graph = new ErdoRenyiModel(num, prob, random);
     }
 
     /**
@@ -38,7 +74,7 @@ class Driver
      */
     public void createWattsStrogatzModel(int num, int avgDeg, double prob)
     {
-        graph = new WattsStrogatzModel(num, avgDeg, prob);
+        graph = new WattsStrogatzModel(num, avgDeg, prob, random);
     }
 
     /**
@@ -49,8 +85,107 @@ class Driver
      */
     public void createScaleFreeModel(int num, double disparity)
     {
+        // Draw the seed the same way for both, so they generate the same
+        // graph.
+        if (generatorThreads > 0 && offHeap)
+            offHeapGraph = ParallelScaleFreeModel.generateOffHeap(num, (int) disparity,
+                    random.nextLong(), generatorThreads);
+        else if (generatorThreads > 0)
+            graph = new ParallelScaleFreeModel(num, (int) disparity, 
+                    random.nextLong(), generatorThreads);
+        else
+            graph = new ScaleFreeModel(num, (int) disparity, random);
+    }
+
+    /**
+     * Seeds the models, so the same seed always generates the same graph.
+     *
+     * @param seed The seed.
+     */
+    public void setSeed(long seed)
+    {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets the number of threads used to generate scale-free models.
+     *
+     * @param threads The number of threads, 0 for the sequential generator.
+     */
+    public void setGeneratorThreads(int threads)
+    {
+        this.generatorThreads = threads;
+    }
+
+    /**
+     * Sets the node ordering used when computing the statistics.
+     * See NodeOrdering for the supported names. The ordering only changes
+     * the memory layout of the -compress and -offheap copies, so the driver
+     * only accepts it together with one of them.
+     *
+     * @param ordering The name of the ordering, or null for none.
+     */
+    public void setNodeOrdering(String ordering)
+    {
+        this.nodeOrdering = ordering;
+    }
+
+    /**
+     * Sets whether the statistics are computed on a compressed copy of the
+     * graph.
+     */
+    public void setCompressed(boolean compressed)
+    {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Sets whether the statistics are computed on an off-heap copy of the
+     * graph. Erdo-Renyi and parallel scale-free models are then generated
+     * straight off the heap, without a copy. The other models are still
+     * generated on the heap first.
+     */
+    public void setOffHeap(boolean offHeap)
+    {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Computes the clustering coefficients by sampling wedges. Each sampled
+     * value is within the given error with probability at least
+     * 1 - failureProbability. The transitivity is estimated the same way.
+     *
+     * @param error The error, or 0 to compute the coefficients exactly.
+     * @param failureProbability The probability of exceeding the error.
+     */
+    public void setApproximateClustering(double error, double failureProbability)
+    {
+        this.clusteringError = error;
+        this.clusteringFailureProbability = failureProbability;
+    }
+
+    /**
+     * Assigns integer weights to the edges before computing the closeness
+     * centralities. See WeightedGraph for the supported weightings.
+     *
+     * @param weighting The name of the weighting, or null for unit weights.
+     * @param maxWeight The largest weight.
+     */
+    public void setWeighting(String weighting, int maxWeight)
+    {
+        this.weighting = weighting;
+        this.maxWeight = maxWeight;
+    }
 
-        graph = new ScaleFreeModel(num, (int) disparity);
+    /**
+     * Returns the distribution of the weighted closeness centralities of the
+     * given graph, computed on all the available processors.
+     */
+    private Map<String, Double> getWeightedClosenessDistribution(GraphView view)
+    {
+        WeightedGraph weighted = new WeightedGraph(view, weighting, maxWeight, weightSeed);
+        return DialShortestPaths.getClosenessCentralityDistribution(weighted,
+                Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -58,7 +193,26 @@ class Driver
      */
     public void printGraph()
     {
-        System.out.println(graph);
+        if (graph != null)
+        {
+            System.out.println(graph);
+            return;
+        }
+
+        // Same format as Graph.toString(), one node at a time.
+        for (int i = 1; i <= offHeapGraph.getNumNodes(); i++)
+        {
+            StringBuilder builder = new StringBuilder();
+            NeighborIterator it = offHeapGraph.getNeighborIterator(i);
+            while (it.hasNext())
+            {
+                int neighbor = it.nextNeighbor();
+                if (i < neighbor)
+                    builder.append(i).append(" ").append(neighbor).append("\n");
+            }
+            System.out.print(builder);
+        }
+        System.out.println();
     }
 
     /**
@@ -91,36 +245,333 @@ class Driver
 
     /**
      * Save the various statistics offered by the Graph implementations.
+     * With -compress or -offheap the graph is dropped once it is copied, so
+     * this must be the last call.
      */
     public void saveStats()
     {
+        // Always draw the seed of the weights, so the other statistics get
+        // the same random numbers with or without -weights.
+        this.weightSeed = random.nextLong();
+
+        if (offHeapGraph != null)
+        {
+            saveOffHeapStats();
+            return;
+        }
+
+        // Relabel the nodes first if requested. The distributions do not
+        // depend on the identifiers, so they need no mapping back.
+        if (nodeOrdering != null)
+            this.graph = this.graph.getRelabeledGraph(
+                    NodeOrdering.getOrdering(this.graph, nodeOrdering));
+
+        if (compressed)
+        {
+            GraphView view = new CompressedGraph(this.graph);
+            this.graph = null;
+            saveStats(view);
+            return;
+        }
+        if (offHeap)
+        {
+            offHeapGraph = new OffHeapGraph(this.graph);
+            this.graph = null;
+            saveOffHeapStats();
+            return;
+        }
+
+        Graph graph = this.graph;
+
         // Degree distribution.
         Map<Integer, Double> degreeDist = graph.getDegreeDistribution();
         writeToFile(degreeDist, degreeOutput);
 
         // Clustering coefficient distribution.
-        Map<String, Double> clusterDist = graph.getClusteringCoefficientDistribution();
+        if (clusteringError > 0.0)
+        {
+            Map<String, Double> clusterDist = 
+                graph.getApproximateClusteringCoefficientDistribution(
+                        clusteringError, clusteringFailureProbability, random);
+            writeToFile(clusterDist, clusterOutput);
+
+            // Transitivity.
+            Map<String, Double> transitivity = new HashMap<String, Double>();
+            transitivity.put("transitivity", graph.getApproximateTransitivity(
+                        clusteringError, clusteringFailureProbability, random));
+            writeToFile(transitivity, transitivityOutput);
+        }
+        else
+        {
+            Map<String, Double> clusterDist = graph.getClusteringCoefficientDistribution();
+            writeToFile(clusterDist, clusterOutput);
+        }
+
+        // Closeness centrality distribution.
+        Map<String, Double> closenessDist = (weighting != null)
+            ? getWeightedClosenessDistribution(graph)
+            : graph.getClosenessCentralityDistribution();
+        writeToFile(closenessDist, closenessOutput);
+    }
+
+    /**
+     * Save the statistics of the off-heap graph and release it.
+     */
+    private void saveOffHeapStats()
+    {
+        try
+        {
+            saveStats(offHeapGraph);
+        }
+        finally
+        {
+            offHeapGraph.close();
+            offHeapGraph = null;
+        }
+    }
+
+    /**
+     * Save the statistics computed by GraphMetrics on the given view.
+     */
+    private void saveStats(GraphView view)
+    {
+        // Degree distribution.
+        Map<Integer, Double> degreeDist = GraphMetrics.getDegreeDistribution(view);
+        writeToFile(degreeDist, degreeOutput);
+
+        // Clustering coefficient distribution.
+        Map<String, Double> clusterDist = GraphMetrics.getClusteringCoefficientDistribution(view);
         writeToFile(clusterDist, clusterOutput);
 
         // Closeness centrality distribution.
-        Map<String, Double> closenessDist = graph.getClosenessCentralityDistribution();
+        Map<String, Double> closenessDist = (weighting != null)
+            ? getWeightedClosenessDistribution(view)
+            : GraphMetrics.getClosenessCentralityDistribution(view);
         writeToFile(closenessDist, closenessOutput);
     }
 
-    public static void main(String[] args)
+    /**
+     * Prints the usage message.
+     */
+    private static void printUsage()
+    {
+        System.out.println("Usage:");
+        System.out.println("\tjavac Driver [options] ER n p");
+        System.out.println("\tjavac Driver [options] WS n k p");
+        System.out.println("\tjavac Driver [options] SF n y");
+        System.out.println("\tjavac Driver [service options] serve [port]");
+        System.out.println("Options:");
+        System.out.println("\t-seed=s\t\t\tSeed the random generator");
+        System.out.println("\t-parallel[=t]\t\tGenerate SF models on t threads");
+        System.out.println("\t-order=degree|rcm\tRelabel nodes before computing statistics,");
+        System.out.println("\t\t\t\twith -compress or -offheap only");
+        System.out.println("\t-compress\t\tCompute statistics on a compressed graph");
+        System.out.println("\t-offheap\t\tCompute statistics on an off-heap graph. Only ER and");
+        System.out.println("\t\t\t\t-parallel SF models are generated there directly,");
+        System.out.println("\t\t\t\tthe others are built on the heap and copied");
+        System.out.println("\t-approx[=e[,f]]\t\tSample wedges for the clustering coefficients, within");
+        System.out.println("\t\t\t\terror e (0.01) with failure probability f (0.05)");
+        System.out.println("\t-weights=uniform|degree[:w]\tWeigh the edges, up to w (10), for closeness");
+        System.out.println("Service options:");
+        System.out.println("\t-threads=t\t\tNumber of requests served at the same time");
+        System.out.println("\t-cache=m\t\tMB of heap used by the cached graphs (half the heap)");
+        System.out.println("\t-stats=s\t\tNumber of cached statistics");
+        System.out.println("\t-connections=c\t\tNumber of connections served at the same time");
+    }
+
+    /**
+     * Runs the graph service on the standard input, or on the given port.
+     * See GraphService for the protocol.
+     */
+    private static void serve(String[] args, Map<String, String> options)
+    {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        long maxGraphSize = Runtime.getRuntime().maxMemory() / 2;
+        int maxStats = 10000;
+        int maxConnections = 16;
+
+        for (Map.Entry<String, String> option : options.entrySet())
+        {
+            if (option.getKey().equals("threads"))
+                numThreads = Integer.parseInt(option.getValue());
+            else if (option.getKey().equals("cache"))
+                maxGraphSize = Long.parseLong(option.getValue()) << 20;
+            else if (option.getKey().equals("stats"))
+                maxStats = Integer.parseInt(option.getValue());
+            else if (option.getKey().equals("connections"))
+                maxConnections = Integer.parseInt(option.getValue());
+            else
+            {
+                System.out.println("Invalid service option: " + option.getKey());
+                printUsage();
+                return;
+            }
+        }
+
+        if (args.length > 2 || numThreads < 1 || maxConnections < 1)
+        {
+            printUsage();
+            return;
+        }
+
+        GraphService service = new GraphService(numThreads, maxGraphSize, maxStats);
+        try
+        {
+            if (args.length == 2)
+                service.serve(Integer.parseInt(args[1]), maxConnections);
+            else
+                service.serve(new BufferedReader(
+                            new InputStreamReader(System.in, "UTF-8")), System.out);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Service failed:");
+            System.out.println(e);
+        }
+        finally
+        {
+            service.shutdown();
+        }
+    }
+
+    public static void main(String[] argv)
     {
+        // Split the options from the positional arguments.
+        List<String> argList = new ArrayList<String>();
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : argv)
+        {
+            if (arg.startsWith("-"))
+            {
+                int split = arg.indexOf('=');
+                if (split < 0)
+                    options.put(arg.substring(1), "");
+                else
+                    options.put(arg.substring(1, split), arg.substring(split + 1));
+            }
+            else
+                argList.add(arg);
+        }
+        String[] args = argList.toArray(new String[argList.size()]);
+
+        // Run as a service instead.
+        if (args.length > 0 && args[0].equals("serve"))
+        {
+            serve(args, options);
+            return;
+        }
+
         // Check number of arguments.
         if (args.length != 3 && args.length != 4)
         {
-            System.out.println("Usage:");
-            System.out.println("\tjavac Driver ER n p");
-            System.out.println("\tjavac Driver WS n k p");
-            System.out.println("\tjavac Driver SF n y");
+            printUsage();
             return;
         }
 
         Driver driver = new Driver();
 
+        // Check the options.
+        for (Map.Entry<String, String> option : options.entrySet())
+        {
+            if (option.getKey().equals("order"))
+            {
+                String ordering = option.getValue();
+                if (!ordering.equals(NodeOrdering.DEGREE) 
+                        && !ordering.equals(NodeOrdering.RCM))
+                {
+                    System.out.println("Invalid node ordering: " + ordering);
+                    return;
+                }
+                driver.setNodeOrdering(ordering);
+            }
+            else if (option.getKey().equals("seed"))
+                driver.setSeed(Long.parseLong(option.getValue()));
+            else if (option.getKey().equals("parallel"))
+            {
+                int threads = option.getValue().isEmpty()
+                    ? Runtime.getRuntime().availableProcessors()
+                    : Integer.parseInt(option.getValue());
+                if (threads < 1)
+                {
+                    System.out.println("Invalid number of threads: " + threads);
+                    return;
+                }
+                driver.setGeneratorThreads(threads);
+            }
+            else if (option.getKey().equals("approx"))
+            {
+                double error = 0.01;
+                double failureProbability = 0.05;
+                if (!option.getValue().isEmpty())
+                {
+                    String[] bounds = option.getValue().split(",");
+                    error = Double.parseDouble(bounds[0]);
+                    if (bounds.length > 1)
+                        failureProbability = Double.parseDouble(bounds[1]);
+                }
+                if (error <= 0.0 || failureProbability <= 0.0 
+                        || failureProbability >= 1.0)
+                {
+                    System.out.println("Invalid error bounds: " + option.getValue());
+                    return;
+                }
+                driver.setApproximateClustering(error, failureProbability);
+            }
+            else if (option.getKey().equals("weights"))
+            {
+                String[] weights = option.getValue().split(":");
+                int maxWeight = (weights.length > 1) ? Integer.parseInt(weights[1]) : 10;
+                if ((!weights[0].equals(WeightedGraph.UNIFORM) 
+                            && !weights[0].equals(WeightedGraph.DEGREE))
+                        || maxWeight < 1)
+                {
+                    System.out.println("Invalid weights: " + option.getValue());
+                    return;
+                }
+                driver.setWeighting(weights[0], maxWeight);
+            }
+            else if (option.getKey().equals("compress"))
+                driver.setCompressed(true);
+            else if (option.getKey().equals("offheap"))
+                driver.setOffHeap(true);
+            else
+            {
+                System.out.println("Invalid option: " + option.getKey());
+                printUsage();
+                return;
+            }
+        }
+
+        if (options.containsKey("compress") && options.containsKey("offheap"))
+        {
+            System.out.println("Only one of -compress and -offheap can be used");
+            return;
+        }
+        if (options.containsKey("approx") 
+                && (options.containsKey("compress") || options.containsKey("offheap")))
+        {
+            System.out.println("-approx can not be used with -compress or -offheap");
+            return;
+        }
+        if (options.containsKey("order") 
+                && !options.containsKey("compress") && !options.containsKey("offheap"))
+        {
+            System.out.println("-order can only be used with -compress or -offheap");
+            return;
+        }
+        if (options.containsKey("parallel") && !args[0].equals("SF"))
+        {
+            System.out.println("-parallel can only be used with SF models");
+            return;
+        }
+        if (options.containsKey("order") && options.containsKey("offheap")
+                && (args[0].equals("ER") 
+                    || (args[0].equals("SF") && options.containsKey("parallel"))))
+        {
+            System.out.println("-order can not be used with -offheap ER or -parallel SF models");
+            return;
+        }
+
         // Check arguments specific to each graph before creating the graph.
         if (args[0].equals("ER"))
         {
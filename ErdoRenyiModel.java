@@ -1,3 +1,6 @@
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * @author Joshua A. Campbell
  * Represents the Erdo-Renyi model.
@@ -5,6 +8,8 @@
 class ErdoRenyiModel extends Graph
 {
     private double probability;
+    // Source of randomness.
+    private Random random;
 
     /**
      * Constructs the G(n, p) model, where a graph is constructed by 
@@ -12,10 +17,20 @@ class ErdoRenyiModel extends Graph
      * with probability p independent from every other edge.
      */
     public ErdoRenyiModel(int numNodes, double probability)
+    {
+        this(numNodes, probability, new Random());
+    }
+
+    /**
+     * Constructs the G(n, p) model using the given source of randomness.
+     * The same seed always generates the same graph.
+     */
+    public ErdoRenyiModel(int numNodes, double probability, Random random)
     {
         super(numNodes);
 
         this.probability = probability;
+        this.random = random;
         generate();
     }
 
@@ -26,8 +41,52 @@ class ErdoRenyiModel extends Graph
     {
         for (int i = 1; i <= this.numNodes; i++)
             for (int j = i+1; j <= this.numNodes; j++)
-                if (Math.random() < this.probability)
+                if (this.random.nextDouble() < this.probability)
                     addUndirectedEdge(i,j);
     }
 
+    /**
+     * Generates the same graph as the constructor with the given source of
+     * randomness, with the same neighbor order, but stores it in an
+     * OffHeapGraph. The edges are drawn first into a plain int array, two
+     * ints per edge, so no Node objects are created.
+     */
+    public static OffHeapGraph generateOffHeap(int numNodes, double probability, 
+            Random random)
+    {
+        int[] degrees = new int[numNodes + 1];
+        int[] edges = new int[1024];
+        int numEdges = 0;
+
+        for (int i = 1; i <= numNodes; i++)
+            for (int j = i+1; j <= numNodes; j++)
+                if (random.nextDouble() < probability)
+                {
+                    if (2 * numEdges + 2 > edges.length)
+                    {
+                        if (edges.length > Integer.MAX_VALUE / 2)
+                            throw new RuntimeException("Too many edges: " + numEdges);
+                        edges = Arrays.copyOf(edges, 2 * edges.length);
+                    }
+                    edges[2 * numEdges] = i;
+                    edges[2 * numEdges + 1] = j;
+                    numEdges++;
+                    degrees[i]++;
+                    degrees[j]++;
+                }
+
+        // Add the edges in the order they were drawn, like generate().
+        OffHeapGraph graph = new OffHeapGraph(degrees);
+        int[] filled = new int[numNodes + 1];
+        for (int e = 0; e < numEdges; e++)
+        {
+            int i = edges[2 * e];
+            int j = edges[2 * e + 1];
+            graph.setNeighbor(i, filled[i]++, j);
+            graph.setNeighbor(j, filled[j]++, i);
+        }
+
+        return graph;
+    }
+
 }
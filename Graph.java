@@ -1,6 +1,7 @@
 import java.lang.RuntimeException;
 import java.lang.StringBuilder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -8,6 +9,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -16,10 +18,13 @@ import java.util.TreeMap;
  *
  * Represents a graph.
  */
-class Graph
+class Graph implements GraphView
 {
     protected int numNodes;
     protected List<Node> nodes;
+    // Maps identifiers of a relabeled graph back to the identifiers of the
+    // graph it was derived from. Null if the graph was never relabeled.
+    protected int[] originalIdentifiers;
 
     /**
      * Constructs a graph with the given number of nodes.
@@ -35,6 +40,57 @@ class Graph
             nodes.add(new Node(i));
     }
 
+    /**
+     * Returns the number of nodes in the graph.
+     */
+    @Override
+    public int getNumNodes()
+    {
+        return this.numNodes;
+    }
+
+    /**
+     * Returns the number of neighbors of the given node.
+     */
+    @Override
+    public int getDegree(int node)
+    {
+        return nodes.get(node).getNeighbors().size();
+    }
+
+    /**
+     * Returns an iterator over the neighbors of the given node, in insertion
+     * order.
+     */
+    @Override
+    public NeighborIterator getNeighborIterator(int node)
+    {
+        final Iterator<Integer> it = nodes.get(node).getNeighbors().iterator();
+
+        return new NeighborIterator()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return it.hasNext();
+            }
+
+            @Override
+            public int nextNeighbor()
+            {
+                return it.next();
+            }
+        };
+    }
+
+    /**
+     * Returns the identifiers of the neighbors of the given node.
+     */
+    public Set<Integer> getNeighbors(int node)
+    {
+        return nodes.get(node).getNeighbors();
+    }
+
     /**
      * Adds an undirected edge between the two nodes with the given
      * identifiers.
@@ -187,6 +243,169 @@ class Graph
         return distribution;
     }
 
+    /**
+     * Returns the number of wedges (pairs of neighbors) to sample so that an
+     * estimated fraction of closed wedges is within the given error with
+     * probability at least 1 - failureProbability (Hoeffding's bound).
+     */
+    public static int getWedgeSampleSize(double error, double failureProbability)
+    {
+        if (error <= 0.0 || failureProbability <= 0.0 || failureProbability >= 1.0)
+            throw new RuntimeException("Invalid error bounds " + error 
+                    + ", " + failureProbability);
+
+        return (int) Math.ceil(Math.log(2.0 / failureProbability) / (2.0 * error * error));
+    }
+
+    /**
+     * Returns an approximate distribution of the clustering coefficients.
+     * Nodes with at most getWedgeSampleSize() pairs of neighbors are computed
+     * exactly. For the other nodes, that many random pairs of neighbors are
+     * checked, so a hub costs O(degree + sample size) instead of
+     * O(degree^2), and its coefficient is within the error with probability
+     * at least 1 - failureProbability.
+     */
+    public Map<String, Double> getApproximateClusteringCoefficientDistribution(
+            double error, double failureProbability, Random random)
+    {
+        Map<String, Double> distribution = new TreeMap<String, Double>();
+        int sampleSize = getWedgeSampleSize(error, failureProbability);
+
+        for (int i = 1; i <= this.numNodes; i++)
+        {
+            Set<Integer> neighbors = this.nodes.get(i).getNeighbors();
+            int[] neighborArray = toArray(neighbors);
+            int numNeighs = neighborArray.length;
+
+            // The number of wedges = (numNeighs choose 2).
+            long wedges = (long) numNeighs * (numNeighs - 1) / 2;
+
+            double coef;
+            if (wedges <= sampleSize)
+            {
+                // Check every pair of neighbors.
+                double closed = 0.0;
+                for (int a = 0; a < numNeighs; a++)
+                    for (int b = a + 1; b < numNeighs; b++)
+                        if (this.nodes.get(neighborArray[a]).getNeighbors()
+                                .contains(neighborArray[b]))
+                            closed += 1.0;
+                coef = closed / wedges;
+            }
+            else
+                coef = sampleClosedWedges(neighborArray, sampleSize, random) 
+                    / sampleSize;
+
+            // Update the frequency.
+            // Round to ten decimal places.
+            String result = String.format("%.10f", coef);
+            Double partialFreq =  distribution.get(result);
+            if (partialFreq == null)
+                distribution.put(result, 1.0);
+            else
+                distribution.put(result, 1.0 + partialFreq);
+        }
+
+        // Get the actual frequency by dividing by the number of nodes at the
+        // end.
+        Iterator<Map.Entry<String,Double>> it = distribution.entrySet().iterator();
+        while (it.hasNext()) 
+        {
+            Map.Entry<String, Double> pair = it.next();
+            distribution.put(pair.getKey(), pair.getValue() / this.numNodes);
+        }
+
+        return distribution;
+    }
+
+    /**
+     * Returns an estimate of the transitivity of the graph, the fraction of
+     * wedges that are closed into triangles. Wedges are sampled uniformly
+     * over the whole graph by picking their center with probability
+     * proportional to its number of wedges, so the estimate is within the
+     * error with probability at least 1 - failureProbability.
+     */
+    public double getApproximateTransitivity(double error, 
+            double failureProbability, Random random)
+    {
+        int sampleSize = getWedgeSampleSize(error, failureProbability);
+
+        // cumulativeWedges[i] = number of wedges centered at nodes 1..i.
+        long[] cumulativeWedges = new long[this.numNodes + 1];
+        for (int i = 1; i <= this.numNodes; i++)
+        {
+            long numNeighs = this.nodes.get(i).getNeighbors().size();
+            cumulativeWedges[i] = cumulativeWedges[i - 1] 
+                + numNeighs * (numNeighs - 1) / 2;
+        }
+
+        long totalWedges = cumulativeWedges[this.numNodes];
+        if (totalWedges == 0)
+            return Double.NaN;
+
+        // Draw the centers first, so we copy the neighbors of each center
+        // only once.
+        int[] samplesPerNode = new int[this.numNodes + 1];
+        for (int s = 0; s < sampleSize; s++)
+        {
+            long wedge = (long) (random.nextDouble() * totalWedges);
+
+            // Find the first node whose cumulative count exceeds the wedge.
+            int low = 1;
+            int high = this.numNodes;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (cumulativeWedges[mid] > wedge)
+                    high = mid;
+                else
+                    low = mid + 1;
+            }
+            samplesPerNode[low]++;
+        }
+
+        double closed = 0.0;
+        for (int i = 1; i <= this.numNodes; i++)
+            if (samplesPerNode[i] > 0)
+                closed += sampleClosedWedges(
+                        toArray(this.nodes.get(i).getNeighbors()), 
+                        samplesPerNode[i], random);
+
+        return closed / sampleSize;
+    }
+
+    /**
+     * Samples pairs of distinct neighbors and returns how many of them are
+     * connected.
+     */
+    private double sampleClosedWedges(int[] neighbors, int samples, Random random)
+    {
+        double closed = 0.0;
+        for (int s = 0; s < samples; s++)
+        {
+            int a = random.nextInt(neighbors.length);
+            int b = random.nextInt(neighbors.length - 1);
+            if (b >= a)
+                b++;
+
+            if (this.nodes.get(neighbors[a]).getNeighbors().contains(neighbors[b]))
+                closed += 1.0;
+        }
+        return closed;
+    }
+
+    /**
+     * Copies the given identifiers into an array.
+     */
+    private static int[] toArray(Set<Integer> identifiers)
+    {
+        int[] array = new int[identifiers.size()];
+        int count = 0;
+        for (Integer identifier : identifiers)
+            array[count++] = identifier;
+        return array;
+    }
+
     /**
      * Used for the Dijkstra's algorithm implementation.
      */
@@ -228,6 +447,7 @@ class Graph
      *  f_close(u) = sum( 1 / dist(u,v) ) for all v in V-{u}.
      *  The bigger the closeness centrality, the relatively important this node
      *  is.
+     *  Unreachable nodes add nothing to the sum.
      */
     public Map<String, Double> getClosenessCentralityDistribution()
     {
@@ -263,6 +483,12 @@ class Graph
             {
                 // The current closest node we are considering.
                 Pair pair = pQueue.poll();
+
+                // Nodes that are not reachable have no paths to extend.
+                // Adding 1 to their distance would overflow.
+                if (distances[pair.val1] == Integer.MAX_VALUE)
+                    continue;
+
                 Set<Integer> neighbors = this.nodes.get(pair.val1).getNeighbors();
                 for (Integer neighbor : neighbors)
                 {
@@ -287,8 +513,10 @@ class Graph
 
             for (int otherNode = 1; otherNode <= this.numNodes; otherNode++)
             {
-                // Ignore the current node.
-                if (currNode != otherNode)
+                // Ignore the current node, and the unreachable nodes, which
+                // are infinitely far away.
+                if (currNode != otherNode 
+                        && distances[otherNode] != Integer.MAX_VALUE)
                     centrality += (1.0 / distances[otherNode]);
             }
 
@@ -315,6 +543,71 @@ class Graph
         return distribution;
     }
 
+    /**
+     * Returns a copy of this graph where node i is renamed to
+     * newIdentifiers[i]. The neighbors of every node are inserted in
+     * increasing order. The copy is still made of Node objects placed
+     * wherever the heap puts them, so this alone does not make the metrics
+     * faster; the order pays off once the copy is turned into a
+     * CompressedGraph or an OffHeapGraph, which are laid out by identifier.
+     * The returned graph remembers the old identifiers, see
+     * getOriginalIdentifier().
+     *
+     * @param newIdentifiers A permutation of 1..numNodes, index 0 is ignored.
+     */
+    public Graph getRelabeledGraph(int[] newIdentifiers)
+    {
+        if (newIdentifiers.length != this.numNodes + 1)
+            throw new RuntimeException("Invalid permutation length " 
+                    + newIdentifiers.length);
+
+        Graph relabeled = new Graph(this.numNodes);
+        relabeled.originalIdentifiers = new int[this.numNodes + 1];
+
+        for (int i = 1; i <= this.numNodes; i++)
+        {
+            int newId = newIdentifiers[i];
+            if (newId < 1 || newId > this.numNodes 
+                    || relabeled.originalIdentifiers[newId] != 0)
+                throw new RuntimeException("Not a permutation at " + i);
+
+            relabeled.originalIdentifiers[newId] = getOriginalIdentifier(i);
+        }
+
+        // Walk the nodes in their new order and add their neighbors sorted.
+        int[] oldIdentifiers = new int[this.numNodes + 1];
+        for (int i = 1; i <= this.numNodes; i++)
+            oldIdentifiers[newIdentifiers[i]] = i;
+
+        for (int newId = 1; newId <= this.numNodes; newId++)
+        {
+            Set<Integer> neighbors = this.nodes.get(oldIdentifiers[newId]).getNeighbors();
+            int[] sorted = new int[neighbors.size()];
+            int count = 0;
+            for (Integer neighbor : neighbors)
+                sorted[count++] = newIdentifiers[neighbor];
+            Arrays.sort(sorted);
+
+            Node node = relabeled.nodes.get(newId);
+            for (int neighbor : sorted)
+                node.addEdgeTo(neighbor);
+        }
+
+        return relabeled;
+    }
+
+    /**
+     * Returns the identifier the given node had before this graph was
+     * relabeled. The distributions returned by this class do not depend on
+     * the identifiers, so only per-node results need to be mapped back.
+     */
+    @Override
+    public int getOriginalIdentifier(int node)
+    {
+        if (this.originalIdentifiers == null)
+            return node;
+        return this.originalIdentifiers[node];
+    }
 
     /**
      * Returns the edges in the graph, sorted from low identifiers to high
@@ -0,0 +1,175 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author Joshua A. Campbell
+ *
+ * Computes the statistics offered by Graph on any GraphView.
+ * The results have the same format as the ones returned by Graph, so the
+ * representations can be swapped without changing the output files.
+ */
+class GraphMetrics
+{
+    private GraphMetrics(){}
+
+    /**
+     * Returns the degree distribution of the graph.
+     * The map maps values to frequency.
+     */
+    public static Map<Integer, Double> getDegreeDistribution(GraphView graph)
+    {
+        Map<Integer, Double> distribution = new TreeMap<Integer, Double>();
+
+        for (int i = 1; i <= graph.getNumNodes(); i++)
+            increment(distribution, graph.getDegree(i));
+
+        return scale(distribution, graph.getNumNodes());
+    }
+
+    /**
+     * Returns the distribution of the clustering coefficients.
+     * The neighbors of the current node are marked in an array, so finding
+     * an edge between two neighbors is a single array lookup.
+     */
+    public static Map<String, Double> getClusteringCoefficientDistribution(GraphView graph)
+    {
+        Map<String, Double> distribution = new TreeMap<String, Double>();
+        int numNodes = graph.getNumNodes();
+
+        // marks[v] == i iff v is a neighbor of node i.
+        int[] marks = new int[numNodes + 1];
+
+        for (int i = 1; i <= numNodes; i++)
+        {
+            int numNeighs = graph.getDegree(i);
+
+            NeighborIterator it = graph.getNeighborIterator(i);
+            while (it.hasNext())
+                marks[it.nextNeighbor()] = i;
+
+            // Count each edge between two neighbors once.
+            double numerator = 0.0;
+            it = graph.getNeighborIterator(i);
+            while (it.hasNext())
+            {
+                int neighbor = it.nextNeighbor();
+                NeighborIterator neighsNeighs = graph.getNeighborIterator(neighbor);
+                while (neighsNeighs.hasNext())
+                {
+                    int neighsNeigh = neighsNeighs.nextNeighbor();
+                    if (neighbor < neighsNeigh && marks[neighsNeigh] == i)
+                        numerator += 1.0;
+                }
+            }
+
+            // The denominator = (numNeighs choose 2).
+            double denominator = numNeighs * (numNeighs - 1);
+            denominator /= 2;
+
+            // Round to ten decimal places.
+            increment(distribution, String.format("%.10f", numerator / denominator));
+        }
+
+        return scale(distribution, numNodes);
+    }
+
+    /**
+     * Returns the distribution of the closeness centralities, using
+     *  f_close(u) = sum( 1 / dist(u,v) ) for all v in V-{u}.
+     * All edges have unit length, so the distances are found with a breadth
+     * first search from every node. Unreachable nodes add nothing to the sum.
+     */
+    public static Map<String, Double> getClosenessCentralityDistribution(GraphView graph)
+    {
+        Map<String, Double> distribution = new TreeMap<String, Double>();
+        int numNodes = graph.getNumNodes();
+
+        int[] distances = new int[numNodes + 1];
+        int[] queue = new int[numNodes];
+
+        for (int currNode = 1; currNode <= numNodes; currNode++)
+        {
+            for (int otherNode = 1; otherNode <= numNodes; otherNode++)
+                distances[otherNode] = -1;
+
+            distances[currNode] = 0;
+            queue[0] = currNode;
+            int head = 0;
+            int tail = 1;
+
+            while (head < tail)
+            {
+                int node = queue[head++];
+                int alt = distances[node] + 1;
+
+                NeighborIterator it = graph.getNeighborIterator(node);
+                while (it.hasNext())
+                {
+                    int neighbor = it.nextNeighbor();
+                    if (distances[neighbor] < 0)
+                    {
+                        distances[neighbor] = alt;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+
+            // Closeness centrality for this node. Sum in the same order as
+            // Graph does, so the rounded results are the same.
+            double centrality = 0.0;
+            for (int otherNode = 1; otherNode <= numNodes; otherNode++)
+                if (otherNode != currNode && distances[otherNode] > 0)
+                    centrality += 1.0 / distances[otherNode];
+
+            // Round to ten decimal places.
+            increment(distribution, String.format("%.10f", centrality));
+        }
+
+        return scale(distribution, numNodes);
+    }
+
+    /**
+     * Returns the original identifiers of the nodes of the graph, or null if
+     * it was never relabeled. Index 0 is ignored.
+     */
+    static int[] getOriginalIdentifiers(GraphView graph)
+    {
+        int[] originalIdentifiers = new int[graph.getNumNodes() + 1];
+        boolean relabeled = false;
+        for (int i = 1; i <= graph.getNumNodes(); i++)
+        {
+            originalIdentifiers[i] = graph.getOriginalIdentifier(i);
+            if (originalIdentifiers[i] != i)
+                relabeled = true;
+        }
+        return relabeled ? originalIdentifiers : null;
+    }
+
+    /**
+     * Adds one to the frequency of the given value.
+     */
+    static <K> void increment(Map<K, Double> distribution, K value)
+    {
+        Double partialFreq = distribution.get(value);
+        if (partialFreq == null)
+            distribution.put(value, 1.0);
+        else
+            distribution.put(value, 1.0 + partialFreq);
+    }
+
+    /**
+     * Divides all the frequencies by the number of nodes.
+     */
+    static <K> Map<K, Double> scale(Map<K, Double> distribution, int numNodes)
+    {
+        Iterator<Map.Entry<K, Double>> it = distribution.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<K, Double> pair = it.next();
+            pair.setValue(pair.getValue() / numNodes);
+        }
+
+        return distribution;
+    }
+}
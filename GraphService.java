@@ -0,0 +1,546 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * @author Joshua A. Campbell
+ *
+ * Long-running service that generates graphs and computes their statistics
+ * on request. Generated graphs and computed statistics are kept in LRU
+ * caches, so repeated requests skip the JVM startup and the generation.
+ *
+ * Requests are read one per line:
+ *  ER n p seed metrics
+ *  WS n k p seed metrics
+ *  SF n y seed metrics
+ * where metrics is a comma separated list of degree, clustering and
+ * closeness. A line containing quit ends the session.
+ *
+ * Requests run concurrently, so the response to each request is written as
+ * one block:
+ *  BEGIN request
+ *  metric value frequency
+ *  ...
+ *  END request
+ * or as a single line ERROR request: message. Every request gets one of
+ * the two, even if it runs out of memory. Graphs that can not fit in the
+ * heap are rejected before they are generated.
+ *
+ * At most numThreads requests run at the same time and a few more wait in
+ * line; reading further requests blocks until one of them is done. A
+ * graph or statistic that is being computed is not computed again by
+ * overlapping requests, they wait for the first one instead.
+ */
+class GraphService
+{
+    // Names of the metrics that can be requested.
+    public static final String DEGREE = "degree";
+    public static final String CLUSTERING = "clustering";
+    public static final String CLOSENESS = "closeness";
+
+    // Estimated heap bytes of a Graph per node (Node, LinkedHashSet and its
+    // table) and per adjacency entry (map entry, boxed Integer and slot).
+    private static final long BYTES_PER_NODE = 200;
+    private static final long BYTES_PER_ENTRY = 64;
+
+    // Cached graphs, weighted by their estimated heap bytes.
+    private LruCache<Graph> graphs;
+    // Cached statistics, one entry per graph and metric.
+    private LruCache<Map<?, Double>> stats;
+    // Graphs and statistics being computed, by key.
+    private ConcurrentHashMap<String, FutureTask<Graph>> pendingGraphs =
+        new ConcurrentHashMap<String, FutureTask<Graph>>();
+    private ConcurrentHashMap<String, FutureTask<Map<?, Double>>> pendingStats =
+        new ConcurrentHashMap<String, FutureTask<Map<?, Double>>>();
+    // Runs the requests.
+    private ExecutorService executor;
+    // Permits for the running and waiting requests.
+    private Semaphore permits;
+
+    /**
+     * Constructs a new service.
+     *
+     * @param numThreads The number of requests that run at the same time.
+     * @param maxGraphSize The total estimated heap bytes of the cached
+     * graphs.
+     * @param maxStats The number of cached statistics.
+     */
+    public GraphService(int numThreads, long maxGraphSize, int maxStats)
+    {
+        this.graphs = new LruCache<Graph>(maxGraphSize)
+        {
+            @Override
+            protected long weigh(Graph graph)
+            {
+                long numEntries = 0;
+                for (int i = 1; i <= graph.getNumNodes(); i++)
+                    numEntries += graph.getDegree(i);
+                return (long) estimateSize(graph.getNumNodes(), numEntries);
+            }
+        };
+        this.stats = new LruCache<Map<?, Double>>(maxStats);
+
+        // A request takes a permit before it is submitted and returns it
+        // when it is done, so the threads reading requests block once
+        // numThreads requests run and as many again wait in the queue.
+        this.executor = Executors.newFixedThreadPool(numThreads);
+        this.permits = new Semaphore(2 * numThreads);
+    }
+
+    /**
+     * Answers the requests read from the given reader until the end of the
+     * input or a quit line, then waits for the pending requests to finish.
+     */
+    public void serve(BufferedReader in, final PrintStream out) throws IOException
+    {
+        List<Future<?>> pending = new ArrayList<Future<?>>();
+
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            final String request = line.trim();
+            if (request.isEmpty())
+                continue;
+            if (request.equals("quit"))
+                break;
+
+            // Forget about the requests that are done.
+            Iterator<Future<?>> it = pending.iterator();
+            while (it.hasNext())
+                if (it.next().isDone())
+                    it.remove();
+
+            permits.acquireUninterruptibly();
+            try
+            {
+                pending.add(executor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            String response = handleRequest(request);
+                            synchronized (out)
+                            {
+                                out.print(response);
+                                out.flush();
+                            }
+                        }
+                        finally
+                        {
+                            permits.release();
+                        }
+                    }
+                }));
+            }
+            catch (RuntimeException e)
+            {
+                permits.release();
+                throw e;
+            }
+        }
+
+        for (Future<?> future : pending)
+        {
+            try
+            {
+                future.get();
+            }
+            catch (Exception e)
+            {
+                // handleRequest() already reported the error.
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of the connections made to the given port on the
+     * loopback interface, at most maxConnections at a time. Further
+     * connections wait until one is closed. Never returns.
+     */
+    public void serve(int port, int maxConnections) throws IOException
+    {
+        ServerSocket server =
+            new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        // Each connection gets a thread to read its requests, the requests
+        // themselves share the executor.
+        ExecutorService connections = Executors.newFixedThreadPool(maxConnections);
+
+        while (true)
+        {
+            final Socket socket = server.accept();
+
+            connections.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        BufferedReader in = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                        PrintStream out =
+                            new PrintStream(socket.getOutputStream(), false, "UTF-8");
+                        serve(in, out);
+                    }
+                    catch (IOException e)
+                    {
+                        System.out.println("Connection failed:");
+                        System.out.println(e);
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            socket.close();
+                        }
+                        catch (IOException e)
+                        {
+                            // Nothing left to do.
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the threads of the service once the running requests are done.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the response to the given request.
+     */
+    String handleRequest(String request)
+    {
+        try
+        {
+            String[] tokens = request.split("\\s+");
+            int numParams = numParams(tokens[0]);
+            if (tokens.length != numParams + 3)
+                throw new RuntimeException("expected " + (numParams + 3)
+                        + " fields but got " + tokens.length);
+
+            // Build the cache key from the parsed values, so that different
+            // spellings of the same number share the same graph.
+            StringBuilder key = new StringBuilder(tokens[0]);
+            for (int i = 1; i <= numParams + 1; i++)
+            {
+                key.append(' ');
+                key.append(parseParam(tokens[0], i, tokens[i]));
+            }
+            String graphKey = key.toString();
+            String[] metrics = tokens[numParams + 2].split(",");
+
+            StringBuilder response = new StringBuilder();
+            response.append("BEGIN ").append(request).append('\n');
+
+            for (String metric : metrics)
+                for (Map.Entry<?, Double> entry : getStats(graphKey, metric).entrySet())
+                {
+                    response.append(metric).append(' ');
+                    response.append(entry.getKey()).append(' ');
+                    response.append(entry.getValue()).append('\n');
+                }
+
+            response.append("END ").append(request).append('\n');
+            return response.toString();
+        }
+        catch (Exception e)
+        {
+            return "ERROR " + request + ": " + e.getMessage() + "\n";
+        }
+        catch (Throwable e)
+        {
+            // Out of memory or stack. Whatever the request allocated is
+            // garbage now, so the service can go on with the next one.
+            return "ERROR " + request + ": " + e + "\n";
+        }
+    }
+
+    /**
+     * Returns the statistic of the graph with the given key, computing it if
+     * it is not cached.
+     */
+    private Map<?, Double> getStats(final String graphKey, final String metric)
+    {
+        if (!metric.equals(DEGREE) && !metric.equals(CLUSTERING)
+                && !metric.equals(CLOSENESS))
+            throw new RuntimeException("unknown metric " + metric);
+
+        return getOrCompute(stats, pendingStats, graphKey + " " + metric,
+                new Callable<Map<?, Double>>()
+                {
+                    @Override
+                    public Map<?, Double> call()
+                    {
+                        Graph graph = getGraph(graphKey);
+                        if (metric.equals(DEGREE))
+                            return graph.getDegreeDistribution();
+                        else if (metric.equals(CLUSTERING))
+                            return graph.getClusteringCoefficientDistribution();
+                        else
+                            return graph.getClosenessCentralityDistribution();
+                    }
+                });
+    }
+
+    /**
+     * Returns the graph with the given key, generating it if it is not
+     * cached.
+     */
+    private Graph getGraph(String graphKey)
+    {
+        final String[] tokens = graphKey.split(" ");
+
+        return getOrCompute(graphs, pendingGraphs, graphKey, new Callable<Graph>()
+        {
+            @Override
+            public Graph call()
+            {
+                checkSize(tokens);
+                Random random = new Random(Long.parseLong(tokens[tokens.length - 1]));
+
+                if (tokens[0].equals("ER"))
+                    return new ErdoRenyiModel(Integer.parseInt(tokens[1]),
+                            Double.parseDouble(tokens[2]), random);
+                else if (tokens[0].equals("WS"))
+                    return new WattsStrogatzModel(Integer.parseInt(tokens[1]),
+                            Integer.parseInt(tokens[2]), Double.parseDouble(tokens[3]), random);
+                else
+                    return new ScaleFreeModel(Integer.parseInt(tokens[1]),
+                            Integer.parseInt(tokens[2]), random);
+            }
+        });
+    }
+
+    /**
+     * Throws if the graph with the given key would obviously not fit in the
+     * heap, using its expected number of adjacency entries.
+     */
+    private static void checkSize(String[] tokens)
+    {
+        long numNodes = Long.parseLong(tokens[1]);
+        double numEntries;
+        if (tokens[0].equals("ER"))
+            numEntries = numNodes * (numNodes - 1) * Double.parseDouble(tokens[2]);
+        else if (tokens[0].equals("WS"))
+            numEntries = numNodes * Double.parseDouble(tokens[2]);
+        else
+            numEntries = 2.0 * numNodes * Double.parseDouble(tokens[2]);
+
+        double size = estimateSize(numNodes, numEntries);
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        if (size > maxMemory)
+            throw new RuntimeException("graph too large, needs about "
+                    + (long) (size / (1 << 20)) + " MB of heap but at most "
+                    + (maxMemory >> 20) + " MB are available");
+    }
+
+    /**
+     * Returns the estimated heap bytes of a Graph with the given number of
+     * nodes and adjacency entries.
+     */
+    private static double estimateSize(long numNodes, double numEntries)
+    {
+        return (double) numNodes * BYTES_PER_NODE + numEntries * BYTES_PER_ENTRY;
+    }
+
+    /**
+     * Returns the cached value with the given key. If it is missing, the
+     * first request computes it and caches it, and overlapping requests for
+     * the same key wait for that result instead of computing it again.
+     */
+    private static <V> V getOrCompute(LruCache<V> cache,
+            ConcurrentHashMap<String, FutureTask<V>> pending, String key,
+            Callable<V> computation)
+    {
+        V value = cache.get(key);
+        if (value != null)
+            return value;
+
+        FutureTask<V> task = new FutureTask<V>(computation);
+        FutureTask<V> running = pending.putIfAbsent(key, task);
+        if (running == null)
+        {
+            running = task;
+            try
+            {
+                // The value may have been cached since we last looked.
+                value = cache.get(key);
+                if (value != null)
+                    return value;
+
+                task.run();
+                value = getResult(task);
+                cache.put(key, value);
+                return value;
+            }
+            finally
+            {
+                // Cache first, then forget, so later requests find one of
+                // the two.
+                pending.remove(key, task);
+            }
+        }
+
+        return getResult(running);
+    }
+
+    /**
+     * Waits for the task and returns its result, throwing its failure.
+     */
+    private static <V> V getResult(FutureTask<V> task)
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the number of parameters of the given model, not counting the
+     * seed.
+     */
+    private static int numParams(String model)
+    {
+        if (model.equals("ER") || model.equals("SF"))
+            return 2;
+        else if (model.equals("WS"))
+            return 3;
+        else
+            throw new RuntimeException("invalid graph type " + model);
+    }
+
+    /**
+     * Parses the index-th field of a request for the given model and returns
+     * it in canonical form.
+     */
+    private static String parseParam(String model, int index, String value)
+    {
+        // The seed is the last field.
+        if (index == numParams(model) + 1)
+            return Long.toString(Long.parseLong(value));
+
+        // The number of nodes and the average degree of WS are integers.
+        if (index == 1 || (model.equals("WS") && index == 2))
+        {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 1)
+                throw new RuntimeException("invalid parameter " + value);
+            return Integer.toString(parsed);
+        }
+        // The disparity of SF is truncated to an integer, like the Driver
+        // does, so every graph that is actually built has one key.
+        if (model.equals("SF") && index == 2)
+        {
+            int parsed = (int) Double.parseDouble(value);
+            if (parsed < 0)
+                throw new RuntimeException("invalid parameter " + value);
+            return Integer.toString(parsed);
+        }
+
+        return Double.toString(Double.parseDouble(value));
+    }
+
+    /**
+     * Thread-safe LRU cache bounded by the total weight of its values.
+     */
+    private static class LruCache<V>
+    {
+        private final long maxWeight;
+        private long totalWeight;
+        // Access ordered, so the eldest entry is the least recently used.
+        private final LinkedHashMap<String, V> values =
+            new LinkedHashMap<String, V>(16, 0.75f, true);
+        private final Map<String, Long> weights = new LinkedHashMap<String, Long>();
+
+        public LruCache(long maxWeight)
+        {
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * Returns the weight of the given value, 1 unless overridden.
+         */
+        protected long weigh(V value)
+        {
+            return 1;
+        }
+
+        /**
+         * Returns the cached value, or null.
+         */
+        public synchronized V get(String key)
+        {
+            return values.get(key);
+        }
+
+        /**
+         * Caches the given value, evicting the least recently used values
+         * until the total weight fits. Values heavier than the whole cache
+         * are not kept.
+         */
+        public void put(String key, V value)
+        {
+            // Weigh outside of the lock, it may walk a whole graph.
+            put(key, value, weigh(value));
+        }
+
+        private synchronized void put(String key, V value, long weight)
+        {
+            if (weight > maxWeight)
+                return;
+
+            if (values.put(key, value) != null)
+                totalWeight -= weights.get(key);
+            weights.put(key, weight);
+            totalWeight += weight;
+
+            Iterator<Map.Entry<String, V>> it = values.entrySet().iterator();
+            while (totalWeight > maxWeight && it.hasNext())
+            {
+                String eldest = it.next().getKey();
+                it.remove();
+                totalWeight -= weights.remove(eldest);
+            }
+        }
+    }
+}
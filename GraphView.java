@@ -0,0 +1,33 @@
+/**
+ * @author Joshua A. Campbell
+ *
+ * Read-only view of the adjacency of an undirected graph.
+ * Node identifiers run from 1 to getNumNodes(), like in Graph.
+ * The algorithms in GraphMetrics only use this interface, so they run on
+ * any of the graph representations.
+ */
+interface GraphView
+{
+    /**
+     * Returns the number of nodes in the graph.
+     */
+    int getNumNodes();
+
+    /**
+     * Returns the number of neighbors of the given node.
+     */
+    int getDegree(int node);
+
+    /**
+     * Returns an iterator over the neighbors of the given node.
+     * The order of the neighbors depends on the representation.
+     */
+    NeighborIterator getNeighborIterator(int node);
+
+    /**
+     * Returns the identifier the given node had before the graph was
+     * relabeled, or the node itself if it never was. Anything that must not
+     * depend on the labels, like random edge weights, should use these.
+     */
+    int getOriginalIdentifier(int node);
+}
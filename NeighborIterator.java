@@ -0,0 +1,18 @@
+/**
+ * @author Joshua A. Campbell
+ *
+ * Iterates over the identifiers of the neighbors of a node without boxing
+ * them.
+ */
+interface NeighborIterator
+{
+    /**
+     * Returns true if there are more neighbors.
+     */
+    boolean hasNext();
+
+    /**
+     * Returns the identifier of the next neighbor.
+     */
+    int nextNeighbor();
+}
@@ -0,0 +1,157 @@
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * @author Joshua A. Campbell
+ *
+ * Computes node orderings that can be passed to
+ * Graph.getRelabeledGraph(). Nodes that are visited together by the metrics
+ * get identifiers that are close together, which keeps their data close
+ * together in memory.
+ *
+ * Only the flat copies, CompressedGraph and OffHeapGraph, are laid out by
+ * identifier. Graph keeps a Node object and a HashSet per node wherever the
+ * heap puts them, so relabeling it does not make the metrics faster. Even
+ * for the flat copies it only pays off once the adjacency no longer fits in
+ * the CPU caches, and Watts-Strogatz graphs are already local in their
+ * generation order.
+ *
+ * Every ordering is returned as an array where index i holds the new
+ * identifier of node i. Index 0 is ignored, like in Graph.
+ */
+class NodeOrdering
+{
+    // Names of the supported orderings.
+    public static final String DEGREE = "degree";
+    public static final String RCM = "rcm";
+
+    private NodeOrdering(){}
+
+    /**
+     * Returns the ordering with the given name for the given graph.
+     */
+    public static int[] getOrdering(Graph graph, String name)
+    {
+        if (name.equals(DEGREE))
+            return degreeOrdering(graph);
+        else if (name.equals(RCM))
+            return reverseCuthillMcKeeOrdering(graph);
+        else
+            throw new RuntimeException("Unknown ordering " + name);
+    }
+
+    /**
+     * Orders the nodes by decreasing degree. The hubs of a scale-free graph,
+     * which are touched by most of the neighbor lookups, end up next to each
+     * other at the start of the identifier space.
+     */
+    public static int[] degreeOrdering(Graph graph)
+    {
+        int numNodes = graph.getNumNodes();
+
+        // Pack (numNodes - degree, identifier) into a long so we can sort
+        // primitives. Ties are broken by the original identifier.
+        long[] keys = new long[numNodes];
+        for (int i = 1; i <= numNodes; i++)
+        {
+            int degree = graph.getNeighbors(i).size();
+            keys[i - 1] = ((long) (numNodes - degree) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] newIdentifiers = new int[numNodes + 1];
+        for (int i = 0; i < numNodes; i++)
+            newIdentifiers[(int) keys[i]] = i + 1;
+
+        return newIdentifiers;
+    }
+
+    /**
+     * Orders the nodes using the Reverse Cuthill-McKee heuristic.
+     * Each connected component is traversed breadth first, starting at its
+     * node of lowest degree and visiting neighbors by increasing degree.
+     * The final order is reversed. This keeps the identifiers of neighbors
+     * close to each other, which is what BFS and triangle counting access.
+     */
+    public static int[] reverseCuthillMcKeeOrdering(Graph graph)
+    {
+        int numNodes = graph.getNumNodes();
+        int[] degrees = new int[numNodes + 1];
+        for (int i = 1; i <= numNodes; i++)
+            degrees[i] = graph.getNeighbors(i).size();
+
+        // Candidate start nodes, by increasing degree.
+        int[] starts = sortByDegree(rangeClosed(1, numNodes), numNodes, degrees);
+
+        // The BFS queue doubles as the Cuthill-McKee order.
+        int[] order = new int[numNodes];
+        boolean[] visited = new boolean[numNodes + 1];
+        int head = 0;
+        int tail = 0;
+
+        for (int start : starts)
+        {
+            if (visited[start])
+                continue;
+
+            visited[start] = true;
+            order[tail++] = start;
+
+            while (head < tail)
+            {
+                int node = order[head++];
+
+                // Collect the unvisited neighbors.
+                Set<Integer> neighbors = graph.getNeighbors(node);
+                int[] next = new int[neighbors.size()];
+                int count = 0;
+                for (Integer neighbor : neighbors)
+                    if (!visited[neighbor])
+                    {
+                        visited[neighbor] = true;
+                        next[count++] = neighbor;
+                    }
+
+                for (int neighbor : sortByDegree(next, count, degrees))
+                    order[tail++] = neighbor;
+            }
+        }
+
+        // Reverse the order.
+        int[] newIdentifiers = new int[numNodes + 1];
+        for (int i = 0; i < numNodes; i++)
+            newIdentifiers[order[i]] = numNodes - i;
+
+        return newIdentifiers;
+    }
+
+    /**
+     * Returns the array [from, from+1, ..., to].
+     */
+    private static int[] rangeClosed(int from, int to)
+    {
+        int[] range = new int[Math.max(0, to - from + 1)];
+        for (int i = 0; i < range.length; i++)
+            range[i] = from + i;
+        return range;
+    }
+
+    /**
+     * Returns the first count nodes of the given array sorted by increasing
+     * degree. Ties are broken by the identifier, so the result is
+     * deterministic.
+     */
+    private static int[] sortByDegree(int[] nodes, int count, int[] degrees)
+    {
+        // Pack (degree, identifier) into a long so we can sort primitives.
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = ((long) degrees[nodes[i]] << 32) | nodes[i];
+        Arrays.sort(keys);
+
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++)
+            sorted[i] = (int) keys[i];
+        return sorted;
+    }
+}
@@ -0,0 +1,229 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * @author Joshua A. Campbell
+ *
+ * Read-only graph that stores the adjacency lists outside of the Java heap.
+ *
+ * The neighbors of all the nodes are stored one after the other as ints in
+ * direct ByteBuffers. A single buffer is indexed by int, so the entries are
+ * split over chunks and addressed with long offsets. This allows more than
+ * 2^31 adjacency entries, and none of them are scanned by the garbage
+ * collector. The memory is released by close().
+ */
+class OffHeapGraph implements GraphView, AutoCloseable
+{
+    // Number of entries per chunk, as a power of two (2^28 ints = 1 GiB).
+    private static final int DEFAULT_CHUNK_SHIFT = 28;
+
+    private int numNodes;
+    // Neighbors of node i are entries offsets[i]..offsets[i+1]-1.
+    private long[] offsets;
+    private ByteBuffer[] chunks;
+    private int chunkShift;
+    private long chunkMask;
+    // Identifiers before relabeling, or null if the copied graph was never
+    // relabeled.
+    private int[] originalIdentifiers;
+    // Whether a failure to free a buffer has been reported.
+    private static volatile boolean reportedFreeFailure;
+
+    /**
+     * Constructs an off-heap copy of the given graph.
+     */
+    public OffHeapGraph(GraphView graph)
+    {
+        this(degreesOf(graph), DEFAULT_CHUNK_SHIFT);
+        this.originalIdentifiers = GraphMetrics.getOriginalIdentifiers(graph);
+
+        for (int i = 1; i <= numNodes; i++)
+        {
+            int index = 0;
+            NeighborIterator it = graph.getNeighborIterator(i);
+            while (it.hasNext())
+                setNeighbor(i, index++, it.nextNeighbor());
+        }
+    }
+
+    /**
+     * Constructs a graph where node i has degrees[i] neighbors, all unset.
+     * Fill them in with setNeighbor(). This allows building graphs whose
+     * adjacency would not fit on the heap.
+     * Index 0 is ignored, like in Graph.
+     */
+    public OffHeapGraph(int[] degrees)
+    {
+        this(degrees, DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Constructs an empty graph with chunks of 2^chunkShift entries.
+     */
+    OffHeapGraph(int[] degrees, int chunkShift)
+    {
+        this.numNodes = degrees.length - 1;
+        this.offsets = new long[numNodes + 2];
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+
+        long numEntries = 0;
+        for (int i = 1; i <= numNodes; i++)
+        {
+            offsets[i] = numEntries;
+            numEntries += degrees[i];
+        }
+        offsets[numNodes + 1] = numEntries;
+
+        // Allocate the chunks, the last one only as big as needed.
+        int numChunks = (int) ((numEntries + chunkMask) >>> chunkShift);
+        this.chunks = new ByteBuffer[numChunks];
+        for (int c = 0; c < numChunks; c++)
+        {
+            long entries = Math.min(numEntries - ((long) c << chunkShift), 1L << chunkShift);
+            chunks[c] = ByteBuffer.allocateDirect((int) (entries * 4))
+                .order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Sets the index-th neighbor of the given node.
+     */
+    public void setNeighbor(int node, int index, int neighbor)
+    {
+        long entry = offsets[node] + index;
+        if (index < 0 || entry >= offsets[node + 1])
+            throw new RuntimeException("Neighbor index " + index
+                    + " out of bounds for node " + node);
+
+        chunks[(int) (entry >>> chunkShift)].putInt((int) (entry & chunkMask) * 4, neighbor);
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     */
+    @Override
+    public int getNumNodes()
+    {
+        return this.numNodes;
+    }
+
+    /**
+     * Returns the number of neighbors of the given node.
+     */
+    @Override
+    public int getDegree(int node)
+    {
+        return (int) (offsets[node + 1] - offsets[node]);
+    }
+
+    /**
+     * Returns an iterator over the neighbors of the given node, in the order
+     * they were set.
+     */
+    @Override
+    public NeighborIterator getNeighborIterator(int node)
+    {
+        if (chunks == null)
+            throw new RuntimeException("Graph has been closed");
+
+        final long end = offsets[node + 1];
+        final long start = offsets[node];
+
+        return new NeighborIterator()
+        {
+            private long entry = start;
+
+            @Override
+            public boolean hasNext()
+            {
+                return entry < end;
+            }
+
+            @Override
+            public int nextNeighbor()
+            {
+                int neighbor = chunks[(int) (entry >>> chunkShift)]
+                    .getInt((int) (entry & chunkMask) * 4);
+                entry++;
+                return neighbor;
+            }
+        };
+    }
+
+    /**
+     * Returns the identifier the given node had in the graph this was copied
+     * from, before it was relabeled.
+     */
+    @Override
+    public int getOriginalIdentifier(int node)
+    {
+        if (this.originalIdentifiers == null)
+            return node;
+        return this.originalIdentifiers[node];
+    }
+
+    /**
+     * Returns the total number of directed adjacency entries.
+     */
+    public long getNumEntries()
+    {
+        return offsets[numNodes + 1];
+    }
+
+    /**
+     * Releases the off-heap memory. The graph can not be used afterwards.
+     */
+    @Override
+    public void close()
+    {
+        if (chunks == null)
+            return;
+
+        for (ByteBuffer chunk : chunks)
+            free(chunk);
+        chunks = null;
+    }
+
+    /**
+     * Returns the degrees of the nodes of the given graph.
+     */
+    private static int[] degreesOf(GraphView graph)
+    {
+        int[] degrees = new int[graph.getNumNodes() + 1];
+        for (int i = 1; i <= graph.getNumNodes(); i++)
+            degrees[i] = graph.getDegree(i);
+        return degrees;
+    }
+
+    /**
+     * Frees the memory of a direct buffer right away.
+     * Java 17 has no public API for this (MemorySegment is still incubating),
+     * so we go through sun.misc.Unsafe. If that is not available, the memory
+     * is released when the buffer is garbage collected.
+     */
+    private static void free(ByteBuffer buffer)
+    {
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+        }
+        catch (Exception e)
+        {
+            // Leave it to the garbage collector, but say so once.
+            if (!reportedFreeFailure)
+            {
+                reportedFreeFailure = true;
+                System.err.println("Unable to free off-heap memory, "
+                        + "it will be released by the garbage collector:");
+                System.err.println(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/**
+ * @author Joshua A. Campbell
+ *
+ * Represents a scale-free model generated in parallel.
+ *
+ * The edges are numbered in the order ScaleFreeModel adds them: edge 0
+ * connects nodes 1 and 2, then every node i >= 3 adds min(disparity, i-1)
+ * edges. Writing the edges as one list of endpoints, where endpoint 2e is
+ * the new node of edge e and endpoint 2e+1 its target, picking a uniformly
+ * random endpoint of an earlier edge picks a node with probability
+ * proportional to its degree. If that endpoint is itself a target, it is
+ * resolved by following the same rule for the earlier edge, until we reach
+ * a source. This is the copy model of preferential attachment.
+ *
+ * A node never links to the same node twice, so a target that repeats an
+ * earlier target of the same node is drawn again, and after MAX_ATTEMPTS
+ * draws it is picked uniformly among the earlier nodes. Following a chain
+ * always uses the first draw of each endpoint, not the target that was
+ * finally stored, so it is only an approximation of the exact copy model
+ * wherever a target was drawn again. The degree distribution still matches
+ * the one of ScaleFreeModel.
+ *
+ * All random choices come from a hash of the seed and the endpoint, not
+ * from a shared generator. So every target can be resolved on its own, in
+ * any order and on any thread, and the same seed always gives the same
+ * graph.
+ *
+ * Every thread then owns a range of nodes and fills in their neighbors:
+ * first the targets of its own nodes, which are contiguous edges, then the
+ * edges pointing into its range. The latter are grouped by range with a
+ * counting sort, so no thread has to scan all the edges.
+ *
+ * generateOffHeap() builds the same graph straight into an OffHeapGraph,
+ * without any Node objects, for graphs too large for the heap.
+ */
+class ParallelScaleFreeModel extends Graph
+{
+    // Attempts at a preferential target before picking a uniform one.
+    private static final int MAX_ATTEMPTS = 64;
+
+    // Disparity index.
+    private int disparity;
+    // Seed of the hash.
+    private long seed;
+    // Number of threads used for the generation.
+    private int numThreads;
+
+    /**
+     * Constructs a new scale-free model using all the available processors.
+     *
+     * @param num The number of nodes in the network.
+     * @param disparity The number of links per node.
+     * @param seed The seed.
+     */
+    public ParallelScaleFreeModel(int num, int disparity, long seed)
+    {
+        this(num, disparity, seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new scale-free model.
+     *
+     * @param num The number of nodes in the network.
+     * @param disparity The number of links per node.
+     * @param seed The seed.
+     * @param numThreads The number of threads to use.
+     */
+    public ParallelScaleFreeModel(int num, int disparity, long seed, int numThreads)
+    {
+        super(num);
+        this.disparity = disparity;
+        this.seed = seed;
+        this.numThreads = Math.max(1, numThreads);
+
+        generate();
+    }
+
+    /**
+     * Generates the graph.
+     */
+    private void generate()
+    {
+        final Edges edges = new Edges(numNodes, disparity, seed, numThreads);
+
+        // Add the edges. Every thread only touches the neighbors of its own
+        // range of nodes, so the sets need no locking. A node links to its
+        // own targets before the later nodes link to it, like in the order
+        // of the edges.
+        ParallelTasks.run(this.numThreads, new ParallelTasks.Task()
+        {
+            @Override
+            public void run(int thread)
+            {
+                for (int source = edges.getLow(thread); source <= edges.getHigh(thread); source++)
+                    for (int e = edges.firstEdge[source]; e < edges.firstEdge[source + 1]; e++)
+                        nodes.get(source).addEdgeTo(edges.targets[e]);
+
+                for (int p = edges.bucketStart[thread]; p < edges.bucketStart[thread + 1]; p++)
+                    nodes.get(edges.bucketTargets[p]).addEdgeTo(edges.bucketSources[p]);
+            }
+        });
+    }
+
+    /**
+     * Generates the same graph as the constructor, with the same neighbor
+     * order, but stores it in an OffHeapGraph. The only heap memory used is
+     * a few ints per node and three ints per edge, released when this
+     * returns.
+     *
+     * @param num The number of nodes in the network.
+     * @param disparity The number of links per node.
+     * @param seed The seed.
+     * @param numThreads The number of threads to use.
+     */
+    public static OffHeapGraph generateOffHeap(final int num, int disparity, 
+            long seed, int numThreads)
+    {
+        final int threads = Math.max(1, numThreads);
+        final Edges edges = new Edges(num, disparity, seed, threads);
+
+        // Every thread counts the degrees of its own range of nodes.
+        final int[] degrees = new int[num + 1];
+        ParallelTasks.run(threads, new ParallelTasks.Task()
+        {
+            @Override
+            public void run(int thread)
+            {
+                for (int source = edges.getLow(thread); source <= edges.getHigh(thread); source++)
+                    degrees[source] += edges.firstEdge[source + 1] - edges.firstEdge[source];
+
+                for (int p = edges.bucketStart[thread]; p < edges.bucketStart[thread + 1]; p++)
+                    degrees[edges.bucketTargets[p]]++;
+            }
+        });
+
+        final OffHeapGraph graph = new OffHeapGraph(degrees);
+
+        // Fill in the neighbors in the same order as generate() adds them.
+        // Every thread only writes the entries of its own range of nodes.
+        final int[] filled = new int[num + 1];
+        ParallelTasks.run(threads, new ParallelTasks.Task()
+        {
+            @Override
+            public void run(int thread)
+            {
+                for (int source = edges.getLow(thread); source <= edges.getHigh(thread); source++)
+                    for (int e = edges.firstEdge[source]; e < edges.firstEdge[source + 1]; e++)
+                        graph.setNeighbor(source, filled[source]++, edges.targets[e]);
+
+                for (int p = edges.bucketStart[thread]; p < edges.bucketStart[thread + 1]; p++)
+                {
+                    int target = edges.bucketTargets[p];
+                    graph.setNeighbor(target, filled[target]++, edges.bucketSources[p]);
+                }
+            }
+        });
+
+        return graph;
+    }
+
+    /**
+     * The numbered edges of a graph, their resolved targets, and the edges
+     * grouped by the range of nodes their target is in.
+     */
+    private static class Edges
+    {
+        private int numNodes;
+        private int disparity;
+        private long seed;
+        // Edges added by node i are firstEdge[i]..firstEdge[i+1]-1.
+        private int[] firstEdge;
+        // Resolved target of every edge.
+        private int[] targets;
+        // Nodes low..high of range r belong to thread r, every range holds
+        // rangeSize nodes.
+        private int rangeSize;
+        // Sources and targets of the edges whose target is in range r are
+        // entries bucketStart[r]..bucketStart[r+1]-1, in edge order.
+        private int[] bucketStart;
+        private int[] bucketSources;
+        private int[] bucketTargets;
+
+        /**
+         * Numbers the edges, resolves their targets and groups them by
+         * range on numThreads threads.
+         */
+        public Edges(int num, int disparity, long seed, final int numThreads)
+        {
+            this.numNodes = num;
+            this.disparity = disparity;
+            this.seed = seed;
+            this.firstEdge = new int[Math.max(num, 2) + 2];
+            this.targets = new int[0];
+            this.rangeSize = Math.max(1, (num + numThreads - 1) / numThreads);
+            this.bucketStart = new int[numThreads + 1];
+            this.bucketSources = new int[0];
+            this.bucketTargets = new int[0];
+
+            if (num < 2)
+                return;
+
+            // Number the edges. Node 1 adds edge 0, node 2 adds none.
+            firstEdge[2] = 1;
+            long numEdges = 1;
+            for (int i = 3; i <= num; i++)
+            {
+                firstEdge[i] = (int) numEdges;
+                numEdges += Math.min(disparity, i - 1);
+                if (numEdges > Integer.MAX_VALUE)
+                    throw new RuntimeException("Too many edges: " + numEdges);
+            }
+            firstEdge[num + 1] = (int) numEdges;
+            this.targets = new int[(int) numEdges];
+            targets[0] = 2;
+
+            // Resolve the targets, every thread takes every numThreads-th
+            // block of nodes so the work stays balanced.
+            ParallelTasks.run(numThreads, new ParallelTasks.Task()
+            {
+                @Override
+                public void run(int thread)
+                {
+                    int blockSize = 1024;
+                    for (int start = 3 + thread * blockSize; start <= numNodes;
+                            start += numThreads * blockSize)
+                    {
+                        int end = Math.min(numNodes, start + blockSize - 1);
+                        for (int i = start; i <= end; i++)
+                            resolveTargets(i);
+                    }
+                }
+            });
+
+            groupByTarget(numThreads);
+        }
+
+        /**
+         * Returns the first node of the given range.
+         */
+        public int getLow(int range)
+        {
+            return (int) Math.min(numNodes + 1L, 1 + (long) range * rangeSize);
+        }
+
+        /**
+         * Returns the last node of the given range.
+         */
+        public int getHigh(int range)
+        {
+            return (int) Math.min(numNodes, (long) getLow(range) + rangeSize - 1);
+        }
+
+        /**
+         * Groups the edges by the range of their target with a counting sort.
+         * Every thread sorts one chunk of the edges, and the chunks are laid
+         * out in order within every range, so the ranges keep the edge order.
+         */
+        private void groupByTarget(final int numThreads)
+        {
+            final int numEdges = targets.length;
+            // Number of edges of chunk t going to range r, then where the
+            // next of them is written.
+            final int[][] positions = new int[numThreads][numThreads];
+
+            ParallelTasks.run(numThreads, new ParallelTasks.Task()
+            {
+                @Override
+                public void run(int thread)
+                {
+                    int end = chunkStart(thread + 1, numThreads);
+                    for (int e = chunkStart(thread, numThreads); e < end; e++)
+                        positions[thread][(targets[e] - 1) / rangeSize]++;
+                }
+            });
+
+            int pos = 0;
+            for (int r = 0; r < numThreads; r++)
+            {
+                bucketStart[r] = pos;
+                for (int t = 0; t < numThreads; t++)
+                {
+                    int count = positions[t][r];
+                    positions[t][r] = pos;
+                    pos += count;
+                }
+            }
+            bucketStart[numThreads] = pos;
+
+            this.bucketSources = new int[numEdges];
+            this.bucketTargets = new int[numEdges];
+            ParallelTasks.run(numThreads, new ParallelTasks.Task()
+            {
+                @Override
+                public void run(int thread)
+                {
+                    int start = chunkStart(thread, numThreads);
+                    int end = chunkStart(thread + 1, numThreads);
+                    if (start == end)
+                        return;
+
+                    // The edges are numbered by source, so the source only
+                    // moves forward.
+                    int source = sourceOf(start);
+                    for (int e = start; e < end; e++)
+                    {
+                        while (firstEdge[source + 1] <= e)
+                            source++;
+
+                        int target = targets[e];
+                        int p = positions[thread][(target - 1) / rangeSize]++;
+                        bucketSources[p] = source;
+                        bucketTargets[p] = target;
+                    }
+                }
+            });
+        }
+
+        /**
+         * Returns the first edge of the given chunk out of numChunks.
+         */
+        private int chunkStart(int chunk, int numChunks)
+        {
+            return (int) ((long) targets.length * chunk / numChunks);
+        }
+
+        /**
+         * Resolves the targets of the edges of node i, which are all different.
+         */
+        private void resolveTargets(int i)
+        {
+            int first = firstEdge[i];
+            int numLinks = firstEdge[i + 1] - first;
+
+            // A node that links to all earlier nodes has no choice.
+            if (numLinks == i - 1)
+            {
+                for (int j = 0; j < numLinks; j++)
+                    targets[first + j] = j + 1;
+                return;
+            }
+
+            for (int j = 0; j < numLinks; j++)
+            {
+                long endpoint = 2L * (first + j) + 1;
+                int target = 0;
+
+                for (int attempt = 0; target == 0; attempt++)
+                {
+                    int candidate;
+                    if (attempt < MAX_ATTEMPTS)
+                        candidate = copyTarget(endpoint, attempt, first);
+                    else
+                        candidate = 1 + (int) uniform(hash(endpoint, attempt), i - 1);
+
+                    // Only keep the candidate if the edge does not exist yet.
+                    boolean exists = false;
+                    for (int prev = first; prev < first + j; prev++)
+                        if (targets[prev] == candidate)
+                            exists = true;
+                    if (!exists)
+                        target = candidate;
+                }
+
+                targets[first + j] = target;
+            }
+        }
+
+        /**
+         * Picks a uniform endpoint among the edges before the given one and
+         * returns the node at that endpoint.
+         */
+        private int copyTarget(long endpoint, int attempt, int numEarlierEdges)
+        {
+            long copied = uniform(hash(endpoint, attempt), 2L * numEarlierEdges);
+
+            // Follow the chain of targets until we reach a source. The first
+            // attempt of every target is a pure function of the seed, so we can
+            // follow it without waiting for the thread that stores it.
+            while (copied % 2 == 1)
+            {
+                int edge = (int) (copied / 2);
+                if (edge == 0)
+                    return 2;
+
+                int source = sourceOf(edge);
+                int earlierEdges = firstEdge[source];
+                if (firstEdge[source + 1] - earlierEdges == source - 1)
+                    return edge - earlierEdges + 1;
+
+                copied = uniform(hash(copied, 0), 2L * earlierEdges);
+            }
+
+            return sourceOf((int) (copied / 2));
+        }
+
+        /**
+         * Returns the node that added the given edge.
+         */
+        private int sourceOf(int edge)
+        {
+            if (edge == 0)
+                return 1;
+
+            // Find the last node whose first edge is at most the given edge.
+            int low = 3;
+            int high = this.numNodes;
+            while (low < high)
+            {
+                int mid = (low + high + 1) >>> 1;
+                if (firstEdge[mid] <= edge)
+                    low = mid;
+                else
+                    high = mid - 1;
+            }
+            return low;
+        }
+
+        /**
+         * Hashes the seed, the endpoint and the attempt (SplitMix64 finalizer).
+         */
+        private long hash(long endpoint, int attempt)
+        {
+            long z = this.seed + endpoint * 0x9E3779B97F4A7C15L + attempt * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        /**
+         * Maps a hash to a value in [0, bound).
+         */
+        private static long uniform(long hash, long bound)
+        {
+            return (hash >>> 1) % bound;
+        }
+    }
+}
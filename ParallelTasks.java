@@ -0,0 +1,75 @@
+/**
+ * @author Joshua A. Campbell
+ *
+ * Runs a task on a number of threads and waits for all of them.
+ * If any thread fails, the failure is thrown again from run(), so the caller
+ * never continues with partial results.
+ */
+class ParallelTasks
+{
+    /**
+     * Work done by each thread.
+     */
+    interface Task
+    {
+        /**
+         * Does the share of the work of the given thread, numbered from 0.
+         */
+        void run(int thread);
+    }
+
+    private ParallelTasks(){}
+
+    /**
+     * Runs the task on numThreads threads and waits for all of them.
+     */
+    public static void run(int numThreads, final Task task)
+    {
+        Thread[] threads = new Thread[Math.max(1, numThreads)];
+        final Throwable[] failures = new Throwable[threads.length];
+
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        task.run(thread);
+                    }
+                    catch (Throwable e)
+                    {
+                        failures[thread] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // join() makes the failures visible to this thread.
+        for (Throwable failure : failures)
+        {
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+            if (failure != null)
+                throw new RuntimeException(failure);
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -10,6 +11,8 @@ class ScaleFreeModel extends Graph
 {
     // Disparity index.
     private int disparity;
+    // Source of randomness.
+    private Random random;
 
     /**
      * Constructs a new scale-free model.
@@ -18,9 +21,23 @@ class ScaleFreeModel extends Graph
      * @param disparity The number of links per node.
      */
     public ScaleFreeModel(int num, int disparity)
+    {
+        this(num, disparity, new Random());
+    }
+
+    /**
+     * Constructs a new scale-free model using the given source of
+     * randomness. The same seed always generates the same graph.
+     *
+     * @param num The number of nodes in the network.
+     * @param disparity The number of links per node.
+     * @param random The source of randomness.
+     */
+    public ScaleFreeModel(int num, int disparity, Random random)
     {
         super(num);
         this.disparity = disparity;
+        this.random = random;
 
         generate();
     }
@@ -63,7 +80,7 @@ class ScaleFreeModel extends Graph
                     double curr = 0.0;
 
                     // The new edge we selected from the distribution.
-                    double newEdge = Math.random();
+                    double newEdge = this.random.nextDouble();
 
                     // Search all the possible nodes we can add for the edge we
                     // need to add.
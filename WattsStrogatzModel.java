@@ -1,4 +1,5 @@
 import java.util.LinkedHashSet;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -12,6 +13,8 @@ class WattsStrogatzModel extends Graph
     private int averageDegree;
     // Probability of rewiring.
     private double rewiringProbability;
+    // Source of randomness.
+    private Random random;
 
     /**
      * Construct a Watts-Strogatz model.
@@ -21,11 +24,26 @@ class WattsStrogatzModel extends Graph
      * @param p Rewiring probability, assumed even.
      */
     public WattsStrogatzModel(int n, int k, double p)
+    {
+        this(n, k, p, new Random());
+    }
+
+    /**
+     * Construct a Watts-Strogatz model using the given source of randomness.
+     * The same seed always generates the same graph.
+     *
+     * @param n Number of nodes.
+     * @param k Average degree.
+     * @param p Rewiring probability, assumed even.
+     * @param random The source of randomness.
+     */
+    public WattsStrogatzModel(int n, int k, double p, Random random)
     {
         super(n);
 
         this.averageDegree = k;
         this.rewiringProbability = p;
+        this.random = random;
 
         generate();
     }
@@ -61,7 +79,7 @@ class WattsStrogatzModel extends Graph
                 if (identifier.compareTo(neighbor) < 0)
                 {
                     // Rewiring probability.
-                    if (Math.random() < this.rewiringProbability)
+                    if (this.random.nextDouble() < this.rewiringProbability)
                     {
                         // Possible new neighbors.
                         Set<Integer> possible = new LinkedHashSet<Integer>();
@@ -76,7 +94,7 @@ class WattsStrogatzModel extends Graph
 
                         // Index of the new neighbor.
                         int newNeighborIndex = 
-                            (int)(Math.random() * possible.size());
+                            (int)(this.random.nextDouble() * possible.size());
 
                         Integer newNeighborIdentifier = null;
                         // Select the new neighbor.
@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+/**
+ * @author Joshua A. Campbell
+ *
+ * Read-only graph with an integer weight (latency) on every edge.
+ *
+ * The neighbors of all the nodes are stored sorted, one after the other, in
+ * a single int array, with the weight of each entry at the same index of a
+ * second array. Both directions of an edge have the same weight.
+ */
+class WeightedGraph implements GraphView
+{
+    // Names of the supported weightings.
+    public static final String UNIFORM = "uniform";
+    public static final String DEGREE = "degree";
+
+    private int numNodes;
+    // Neighbors of node i are entries offsets[i]..offsets[i+1]-1.
+    private int[] offsets;
+    private int[] neighbors;
+    private int[] weights;
+    private int maxWeight;
+    // Identifiers before relabeling, or null if the copied graph was never
+    // relabeled.
+    private int[] originalIdentifiers;
+
+    /**
+     * Constructs a weighted copy of the given graph.
+     * With the uniform weighting, every edge gets a weight drawn uniformly
+     * from 1..maxWeight by hashing the seed and the original identifiers of
+     * its endpoints, so relabeling the graph does not change the weights.
+     * With the degree weighting, the edge between u and v
+     * gets ceil(sqrt(degree(u) * degree(v))), capped at maxWeight, so edges
+     * at hubs are slower.
+     *
+     * @param graph The graph to copy.
+     * @param weighting The name of the weighting.
+     * @param maxWeight The largest weight.
+     * @param seed The seed of the uniform weighting.
+     */
+    public WeightedGraph(GraphView graph, String weighting, int maxWeight, long seed)
+    {
+        if (maxWeight < 1)
+            throw new RuntimeException("Invalid maximum weight " + maxWeight);
+        if (!weighting.equals(UNIFORM) && !weighting.equals(DEGREE))
+            throw new RuntimeException("Unknown weighting " + weighting);
+
+        this.numNodes = graph.getNumNodes();
+        this.maxWeight = maxWeight;
+        this.offsets = new int[numNodes + 2];
+        this.originalIdentifiers = GraphMetrics.getOriginalIdentifiers(graph);
+
+        long numEntries = 0;
+        for (int i = 1; i <= numNodes; i++)
+        {
+            offsets[i] = (int) numEntries;
+            numEntries += graph.getDegree(i);
+            if (numEntries > Integer.MAX_VALUE)
+                throw new RuntimeException("Too many edges: " + numEntries);
+        }
+        offsets[numNodes + 1] = (int) numEntries;
+
+        // Copy the sorted neighbors.
+        this.neighbors = new int[(int) numEntries];
+        this.weights = new int[(int) numEntries];
+        for (int i = 1; i <= numNodes; i++)
+        {
+            int entry = offsets[i];
+            NeighborIterator it = graph.getNeighborIterator(i);
+            while (it.hasNext())
+                neighbors[entry++] = it.nextNeighbor();
+            Arrays.sort(neighbors, offsets[i], offsets[i + 1]);
+        }
+
+        // Weigh every edge once, from its lower endpoint, and copy the
+        // weight to the entry of the other direction.
+        for (int u = 1; u <= numNodes; u++)
+            for (int entry = offsets[u]; entry < offsets[u + 1]; entry++)
+            {
+                int v = neighbors[entry];
+                if (u > v)
+                    continue;
+
+                int weight;
+                if (weighting.equals(UNIFORM))
+                    weight = 1 + (int) ((hash(seed, getOriginalIdentifier(u),
+                                    getOriginalIdentifier(v)) >>> 1) % maxWeight);
+                else
+                    weight = (int) Math.min(maxWeight, Math.ceil(
+                                Math.sqrt((double) getDegree(u) * getDegree(v))));
+
+                weights[entry] = weight;
+                int reverse = Arrays.binarySearch(neighbors, offsets[v], offsets[v + 1], u);
+                weights[reverse] = weight;
+            }
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     */
+    @Override
+    public int getNumNodes()
+    {
+        return this.numNodes;
+    }
+
+    /**
+     * Returns the number of neighbors of the given node.
+     */
+    @Override
+    public int getDegree(int node)
+    {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * Returns an iterator over the neighbors of the given node, in
+     * increasing order.
+     */
+    @Override
+    public NeighborIterator getNeighborIterator(final int node)
+    {
+        return new NeighborIterator()
+        {
+            private int entry = offsets[node];
+
+            @Override
+            public boolean hasNext()
+            {
+                return entry < offsets[node + 1];
+            }
+
+            @Override
+            public int nextNeighbor()
+            {
+                return neighbors[entry++];
+            }
+        };
+    }
+
+    /**
+     * Returns the identifier the given node had in the graph this was copied
+     * from, before it was relabeled.
+     */
+    @Override
+    public int getOriginalIdentifier(int node)
+    {
+        if (this.originalIdentifiers == null)
+            return node;
+        return this.originalIdentifiers[node];
+    }
+
+    /**
+     * Returns the largest weight an edge can have.
+     */
+    public int getMaxWeight()
+    {
+        return this.maxWeight;
+    }
+
+    /**
+     * Returns the index of the first adjacency entry of the given node.
+     * The entries of node i are getFirstEntry(i)..getFirstEntry(i+1)-1.
+     */
+    int getFirstEntry(int node)
+    {
+        return offsets[node];
+    }
+
+    /**
+     * Returns the neighbor stored in the given adjacency entry.
+     */
+    int getNeighbor(int entry)
+    {
+        return neighbors[entry];
+    }
+
+    /**
+     * Returns the weight stored in the given adjacency entry.
+     */
+    int getWeight(int entry)
+    {
+        return weights[entry];
+    }
+
+    /**
+     * Hashes the seed and the unordered pair of nodes (SplitMix64 finalizer).
+     */
+    private static long hash(long seed, int u, int v)
+    {
+        long z = seed + Math.min(u, v) * 0x9E3779B97F4A7C15L 
+            + Math.max(u, v) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}